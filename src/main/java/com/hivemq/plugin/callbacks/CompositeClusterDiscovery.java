@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.callbacks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.inject.Inject;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import com.hivemq.plugin.configuration.HostsFileConfiguration;
+import com.hivemq.spi.callback.cluster.ClusterDiscoveryCallback;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import com.hivemq.spi.services.MetricService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntSupplier;
+
+/**
+ * Cluster discovery combining DNS, static seeds and the hosts file.
+ * All sources are queried in parallel, a failing source does not affect the others.
+ * The results are merged, de-duplicated and optionally reduced to a bounded subset of peers,
+ * see {@link PeerSubsetSelector}.
+ *
+ * @author Simon Baier
+ */
+@Singleton
+public class CompositeClusterDiscovery implements ClusterDiscoveryCallback {
+    private static final Logger log = LoggerFactory.getLogger(CompositeClusterDiscovery.class);
+    public static final String SOURCE_LATENCY_METRIC_PREFIX = "com.hivemq.plugin.dns-discovery.source";
+    public static final String ROUND_LATENCY_METRIC = "com.hivemq.plugin.dns-discovery.round.latency";
+
+    private final Map<String, ClusterDiscoveryCallback> sources;
+    private final Map<String, Timer> sourceTimers;
+    private final IntSupplier peerSubsetSize;
+    private final Timer roundTimer;
+    private ClusterNodeAddress ownAddress;
+    private volatile List<ClusterNodeAddress> lastMembership = Collections.emptyList();
+    private volatile long lastMembershipTimestamp;
+    private volatile long lastMembershipChangeTimestamp;
+    private final AtomicBoolean ownAddressMissing = new AtomicBoolean();
+
+    @Inject
+    public CompositeClusterDiscovery(final DnsClusterDiscovery dnsClusterDiscovery,
+                                     final DnsDiscoveryConfiguration discoveryConfiguration,
+                                     final HostsFileConfiguration hostsFileConfiguration,
+                                     final MetricService metricService) {
+        this(ImmutableMap.of(
+                "dns", dnsClusterDiscovery,
+                "static", new StaticClusterDiscovery(discoveryConfiguration::staticSeeds),
+                "file", new StaticClusterDiscovery(hostsFileConfiguration::hosts)),
+                discoveryConfiguration::peerSubsetSize,
+                metricService.getMetricRegistry());
+    }
+
+    CompositeClusterDiscovery(final Map<String, ClusterDiscoveryCallback> sources,
+                              final IntSupplier peerSubsetSize,
+                              final MetricRegistry metricRegistry) {
+        this.sources = sources;
+        this.peerSubsetSize = peerSubsetSize;
+        this.roundTimer = metricRegistry.timer(ROUND_LATENCY_METRIC);
+        this.sourceTimers = new LinkedHashMap<>();
+        for (final String name : sources.keySet()) {
+            sourceTimers.put(name, metricRegistry.timer(MetricRegistry.name(SOURCE_LATENCY_METRIC_PREFIX, name, "latency")));
+        }
+    }
+
+    @Override
+    public void init(String clusterId, ClusterNodeAddress ownAddress) {
+        this.ownAddress = ownAddress;
+        sources.values().forEach((source) -> source.init(clusterId, ownAddress));
+    }
+
+    @Override
+    public ListenableFuture<List<ClusterNodeAddress>> getNodeAddresses() {
+        return round(true);
+    }
+
+    /**
+     * Runs a discovery round on request, e.g. after the DNS cache was invalidated. The sources update their state
+     * as in any round, but the result is not passed to HiveMQ and the round is not recorded in the latency timers
+     * or the last membership, which reflect the rounds triggered by HiveMQ.
+     */
+    public ListenableFuture<List<ClusterNodeAddress>> refreshRound() {
+        return round(false);
+    }
+
+    @Override
+    public void destroy() {
+        sources.values().forEach(ClusterDiscoveryCallback::destroy);
+    }
+
+    public List<ClusterNodeAddress> getLastMembership() {
+        return lastMembership;
+    }
+
+    /**
+     * @return the time of the last completed round in milliseconds since epoch, 0 if no round completed yet
+     */
+    public long getLastMembershipTimestamp() {
+        return lastMembershipTimestamp;
+    }
+
+    /**
+     * @return the time the membership last changed in milliseconds since epoch, 0 if no round completed yet
+     */
+    public long getLastMembershipChangeTimestamp() {
+        return lastMembershipChangeTimestamp;
+    }
+
+    public Timer getRoundTimer() {
+        return roundTimer;
+    }
+
+    private void recordMembership(final List<ClusterNodeAddress> membership) {
+        final long now = System.currentTimeMillis();
+        if (lastMembershipChangeTimestamp == 0 || !keys(membership).equals(keys(lastMembership))) {
+            lastMembershipChangeTimestamp = now;
+        }
+        lastMembership = Collections.unmodifiableList(membership);
+        lastMembershipTimestamp = now;
+    }
+
+    private static Set<String> keys(final List<ClusterNodeAddress> addresses) {
+        final Set<String> keys = new HashSet<>();
+        addresses.forEach((address) -> keys.add(address.getHost() + ":" + address.getPort()));
+        return keys;
+    }
+
+    private ListenableFuture<List<ClusterNodeAddress>> round(final boolean record) {
+        final Timer.Context round = record ? roundTimer.time() : null;
+        final List<ListenableFuture<List<ClusterNodeAddress>>> results = new ArrayList<>();
+        for (final Map.Entry<String, ClusterDiscoveryCallback> source : sources.entrySet()) {
+            results.add(resolve(source.getKey(), source.getValue(), record));
+        }
+        final Function<List<List<ClusterNodeAddress>>, List<ClusterNodeAddress>> mergeAndSelect = (sourceResults) -> {
+            final List<ClusterNodeAddress> discovered = merge(sourceResults);
+            final int subsetSize = peerSubsetSize.getAsInt();
+            checkOwnAddress(discovered, subsetSize);
+            final List<ClusterNodeAddress> membership = PeerSubsetSelector.select(ownAddress, discovered, subsetSize);
+            if (record) {
+                round.stop();
+                recordMembership(membership);
+            }
+            return membership;
+        };
+        return Futures.transform(Futures.successfulAsList(results), mergeAndSelect, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<ClusterNodeAddress>> resolve(final String name, final ClusterDiscoveryCallback source,
+                                                               final boolean record) {
+        final Timer.Context timer = record ? sourceTimers.get(name).time() : null;
+        final long start = System.nanoTime();
+        final ListenableFuture<List<ClusterNodeAddress>> result;
+        try {
+            result = source.getNodeAddresses();
+        } catch (RuntimeException e) {
+            if (timer != null) {
+                timer.stop();
+            }
+            log.warn("Discovery source '{}' failed, error: '{}'", name, e.getMessage());
+            return Futures.immediateFailedFuture(e);
+        }
+        result.addListener(() -> {
+            final long latency = timer != null ? timer.stop() : System.nanoTime() - start;
+            try {
+                final List<ClusterNodeAddress> addresses = result.get();
+                log.debug("Discovery source '{}' returned {} addresses in {} ms",
+                        name, addresses == null ? 0 : addresses.size(), TimeUnit.NANOSECONDS.toMillis(latency));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("Discovery source '{}' failed after {} ms, error: '{}'",
+                        name, TimeUnit.NANOSECONDS.toMillis(latency), e.getCause().getMessage());
+            }
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * The peer subset is selected on the hash ring position of the own address. If the own address is not discovered,
+     * e.g. because the cluster binds to a host name while DNS returns IPs, the other nodes do not know this position
+     * and it is a phantom on their rings.
+     */
+    private void checkOwnAddress(final List<ClusterNodeAddress> discovered, final int subsetSize) {
+        // without a subset every address is returned, and no addresses means the sources are not ready yet
+        final boolean missing = subsetSize > 0 && !discovered.isEmpty()
+                && !PeerSubsetSelector.contains(discovered, ownAddress);
+        if (missing && ownAddressMissing.compareAndSet(false, true)) {
+            log.warn("Own address '{}:{}' is not among the {} discovered addresses, the peer subset of this node " +
+                            "does not match the hash ring of the other nodes. Use the same address for the cluster " +
+                            "transport as in the DNS record, static seeds or hosts file",
+                    ownAddress.getHost(), ownAddress.getPort(), discovered.size());
+        } else if (!missing && ownAddressMissing.compareAndSet(true, false)) {
+            log.info("Own address '{}:{}' is among the discovered addresses now", ownAddress.getHost(), ownAddress.getPort());
+        }
+    }
+
+    /**
+     * @return true while the peer subset is used and the own address is not among the discovered addresses
+     */
+    @VisibleForTesting
+    boolean isOwnAddressMissing() {
+        return ownAddressMissing.get();
+    }
+
+    private static List<ClusterNodeAddress> merge(final List<List<ClusterNodeAddress>> results) {
+        final Map<String, ClusterNodeAddress> merged = new LinkedHashMap<>();
+        for (final List<ClusterNodeAddress> addresses : results) {
+            // failed sources are null
+            if (addresses == null) {
+                continue;
+            }
+            for (final ClusterNodeAddress address : addresses) {
+                merged.putIfAbsent(address.getHost() + ":" + address.getPort(), address);
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.callbacks;
+
+import com.google.common.base.Ticker;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker guarding the DNS server against repeated full-timeout queries while it is failing.
+ * <p>
+ * After {@link DnsDiscoveryConfiguration#circuitBreakerFailureThreshold()} consecutive failures the breaker opens
+ * and no queries are sent. Once the jittered, exponentially growing backoff has passed, a single probe query is
+ * allowed (half-open). A successful probe closes the breaker, a failed probe opens it again. A probe which does not
+ * report back within twice the resolution timeout counts as failed, so a lost probe cannot keep the breaker half-open.
+ *
+ * @author Simon Baier
+ */
+class DnsCircuitBreaker {
+    private static final Logger log = LoggerFactory.getLogger(DnsCircuitBreaker.class);
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final DnsDiscoveryConfiguration discoveryConfiguration;
+    private final Ticker ticker;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int consecutiveOpens;
+    private long retryAtNanos;
+    private long probeDeadlineNanos;
+
+    DnsCircuitBreaker(final DnsDiscoveryConfiguration discoveryConfiguration, final Ticker ticker) {
+        this.discoveryConfiguration = discoveryConfiguration;
+        this.ticker = ticker;
+    }
+
+    /**
+     * @return true if a DNS query may be sent now, false if the last known addresses should be used instead
+     */
+    synchronized boolean allowRequest() {
+        if (discoveryConfiguration.circuitBreakerFailureThreshold() <= 0) {
+            reset();
+            return true;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                final long now = ticker.read();
+                if (now - retryAtNanos >= 0) {
+                    log.debug("DNS circuit breaker half-open, sending probe query");
+                    state = State.HALF_OPEN;
+                    probeDeadlineNanos = now + TimeUnit.SECONDS.toNanos(2L * Math.max(1, discoveryConfiguration.resolutionTimeout()));
+                    return true;
+                }
+                return false;
+            default:
+                if (ticker.read() - probeDeadlineNanos >= 0) {
+                    log.warn("DNS circuit breaker probe did not complete in time, treating it as failed");
+                    consecutiveFailures++;
+                    open();
+                }
+                // a probe is already in flight
+                return false;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            log.info("DNS resolution succeeded, closing circuit breaker");
+        }
+        reset();
+    }
+
+    synchronized void recordFailure() {
+        final int threshold = discoveryConfiguration.circuitBreakerFailureThreshold();
+        if (threshold <= 0) {
+            return;
+        }
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= threshold)) {
+            open();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    synchronized void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        consecutiveOpens = 0;
+    }
+
+    private void open() {
+        consecutiveOpens++;
+        final long backoff = TimeUnit.SECONDS.toNanos(Math.max(1, discoveryConfiguration.circuitBreakerBackoff()));
+        final long maxBackoff = Math.max(backoff, TimeUnit.SECONDS.toNanos(discoveryConfiguration.circuitBreakerMaxBackoff()));
+        final int exponent = Math.min(consecutiveOpens - 1, 30);
+        final long cappedBackoff = backoff > maxBackoff >> exponent ? maxBackoff : backoff << exponent;
+        // equal jitter, so that the nodes of a fleet do not probe the DNS server in lockstep
+        final long jitteredBackoff = cappedBackoff / 2 + ThreadLocalRandom.current().nextLong(cappedBackoff / 2 + 1);
+        retryAtNanos = ticker.read() + jitteredBackoff;
+        state = State.OPEN;
+        log.warn("DNS resolution failed {} times in a row, opening circuit breaker for {} ms",
+                consecutiveFailures, TimeUnit.NANOSECONDS.toMillis(jitteredBackoff));
+    }
+}
@@ -16,29 +16,41 @@
 
 package com.hivemq.plugin.callbacks;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
 import com.hivemq.spi.callback.cluster.ClusterDiscoveryCallback;
 import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import com.hivemq.spi.services.MetricService;
 import com.hivemq.spi.services.PluginExecutorService;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioDatagramChannel;
 import io.netty.resolver.dns.DnsNameResolver;
 import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddressStreamProvider;
+import io.netty.resolver.dns.DnsServerAddressStreamProviders;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.concurrent.Future;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.validator.routines.InetAddressValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Singleton;
 import java.net.InetAddress;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -47,24 +59,54 @@ import java.util.stream.Collectors;
  *
  * @author Simon Baier
  */
+@Singleton
 public class DnsClusterDiscovery implements ClusterDiscoveryCallback {
     private static final Logger log = LoggerFactory.getLogger(DnsClusterDiscovery.class);
-    public static final ArrayList<ClusterNodeAddress> EMPTY_LIST = Lists.newArrayList();
-
+    /* 0 = closed, 1 = open, 2 = half-open */
+    public static final String CIRCUIT_BREAKER_STATE_METRIC = "com.hivemq.plugin.dns-discovery.circuit-breaker.state";
+    public static final String ERRORS_METRIC = "com.hivemq.plugin.dns-discovery.resolution.errors";
+    public static final String NEGATIVE_ANSWERS_METRIC = "com.hivemq.plugin.dns-discovery.resolution.negative-answers";
+    static final String RESOLVER_THREAD_POOL_NAME = "dns-discovery-resolver";
 
     private final PluginExecutorService pluginExecutorService;
     private final DnsDiscoveryConfiguration discoveryConfiguration;
     private final NioEventLoopGroup eventLoopGroup;
     private final InetAddressValidator addressValidator;
+    private final DnsCircuitBreaker circuitBreaker;
+    private final DnsServerAddressStreamProvider nameServerProvider;
+    private final Counter errors;
+    private final Counter negativeAnswers;
     private ClusterNodeAddress ownAddress;
+    private volatile List<ClusterNodeAddress> lastKnownAddresses = Collections.emptyList();
+    private volatile String lastError;
+    private volatile long lastErrorTimestamp;
+    private volatile String negativeCacheAddress;
+    private volatile long negativeCacheExpiryNanos;
+    private final AtomicBoolean negativeAnswer = new AtomicBoolean();
 
     @Inject
     public DnsClusterDiscovery(PluginExecutorService pluginExecutorService,
-                               DnsDiscoveryConfiguration discoveryConfiguration) {
+                               DnsDiscoveryConfiguration discoveryConfiguration,
+                               MetricService metricService) {
+        this(pluginExecutorService, discoveryConfiguration, metricService, DnsServerAddressStreamProviders.platformDefault());
+    }
+
+    @VisibleForTesting
+    DnsClusterDiscovery(PluginExecutorService pluginExecutorService,
+                        DnsDiscoveryConfiguration discoveryConfiguration,
+                        MetricService metricService,
+                        DnsServerAddressStreamProvider nameServerProvider) {
         this.pluginExecutorService = pluginExecutorService;
-        this.eventLoopGroup = new NioEventLoopGroup();
+        // a single resolver is used per round, so one event loop thread is sufficient
+        this.eventLoopGroup = new NioEventLoopGroup(1, new DefaultThreadFactory(RESOLVER_THREAD_POOL_NAME, true));
+        this.nameServerProvider = nameServerProvider;
         this.addressValidator = InetAddressValidator.getInstance();
         this.discoveryConfiguration = discoveryConfiguration;
+        this.circuitBreaker = new DnsCircuitBreaker(discoveryConfiguration, Ticker.systemTicker());
+        final MetricRegistry metricRegistry = metricService.getMetricRegistry();
+        metricRegistry.register(CIRCUIT_BREAKER_STATE_METRIC, (Gauge<Integer>) () -> circuitBreaker.getState().ordinal());
+        this.errors = metricRegistry.counter(ERRORS_METRIC);
+        this.negativeAnswers = metricRegistry.counter(NEGATIVE_ANSWERS_METRIC);
     }
 
     @Override
@@ -79,13 +121,36 @@ public class DnsClusterDiscovery implements ClusterDiscoveryCallback {
             if (discoveryAddress == null) {
                 return Lists.newArrayList();
             }
+            if (isNegativeAnswerCached(discoveryAddress)) {
+                log.debug("DNS record for address '{}' does not exist, using cached negative answer", discoveryAddress);
+                return Lists.newArrayList();
+            }
+            if (!circuitBreaker.allowRequest()) {
+                log.debug("DNS circuit breaker is open, using last known addresses instead of resolving '{}'", discoveryAddress);
+                return Lists.newArrayList(lastKnownAddresses);
+            }
             final int discoveryTimeout = discoveryConfiguration.resolutionTimeout();
 
             // initialize netty DNS resolver
+            final NegativeAnswerClassifier classifier = new NegativeAnswerClassifier();
             try (DnsNameResolver resolver = new DnsNameResolverBuilder(eventLoopGroup.next())
-                    .channelType(NioDatagramChannel.class).build()) {
+                    .channelType(NioDatagramChannel.class)
+                    .nameServerProvider(nameServerProvider)
+                    .dnsQueryLifecycleObserverFactory(classifier).build()) {
                 final Future<List<InetAddress>> addresses = resolver.resolveAll(discoveryAddress);
-                final List<ClusterNodeAddress> clusterNodeAddresses = addresses.get(discoveryTimeout, TimeUnit.SECONDS)
+                final List<InetAddress> resolvedAddresses;
+                try {
+                    resolvedAddresses = addresses.get(discoveryTimeout, TimeUnit.SECONDS);
+                } catch (ExecutionException ex) {
+                    if (!classifier.isNegativeAnswer()) {
+                        throw ex;
+                    }
+                    // a record which does not exist (yet) is a valid answer and not a DNS server failure
+                    circuitBreaker.recordSuccess();
+                    recordNegativeAnswer(discoveryAddress);
+                    return Lists.newArrayList();
+                }
+                final List<ClusterNodeAddress> clusterNodeAddresses = resolvedAddresses
                         .stream()
                         // Skip any possibly unresolved elements
                         .filter(Objects::nonNull)
@@ -96,17 +161,117 @@ public class DnsClusterDiscovery implements ClusterDiscoveryCallback {
                 if (log.isTraceEnabled()) {
                     clusterNodeAddresses.forEach((address) -> log.trace("Found address: '{}'", address.getHost()));
                 }
+                if (negativeAnswer.compareAndSet(true, false)) {
+                    log.info("DNS record for address '{}' exists now", discoveryAddress);
+                }
+                circuitBreaker.recordSuccess();
+                lastKnownAddresses = clusterNodeAddresses;
                 return clusterNodeAddresses;
             } catch (ExecutionException ex) {
+                circuitBreaker.recordFailure();
+                recordError(ex.getMessage());
                 log.warn("Failed to resolve DNS record for address '{}', error: '{}'", discoveryAddress, ex.getMessage());
                 if (log.isTraceEnabled()) {
                     log.trace("Stacktrace: '{}'", ExceptionUtils.getStackTrace(ex));
                 }
+            } catch (TimeoutException ex) {
+                circuitBreaker.recordFailure();
+                recordError("Timed out after " + discoveryTimeout + " seconds");
+                log.warn("Timed out resolving DNS record for address '{}' after {} seconds", discoveryAddress, discoveryTimeout);
+            } catch (InterruptedException ex) {
+                // the breaker must not wait for a probe which never reports back
+                circuitBreaker.recordFailure();
+                Thread.currentThread().interrupt();
+                log.debug("Interrupted while resolving DNS record for address '{}'", discoveryAddress);
+            } catch (RuntimeException ex) {
+                circuitBreaker.recordFailure();
+                recordError(ex.toString());
+                log.warn("Failed to resolve DNS record for address '{}', error: '{}'", discoveryAddress, ex.toString());
+                if (log.isTraceEnabled()) {
+                    log.trace("Stacktrace: '{}'", ExceptionUtils.getStackTrace(ex));
+                }
             }
-            return EMPTY_LIST;
+            // serve the last known membership, so a failing DNS server does not isolate this node
+            return Lists.newArrayList(lastKnownAddresses);
         });
     }
 
+    /**
+     * Forgets the last known addresses and the cached negative answer and closes the circuit breaker,
+     * so the next round queries the DNS server.
+     */
+    public void invalidateCache() {
+        lastKnownAddresses = Collections.emptyList();
+        negativeCacheAddress = null;
+        negativeAnswer.set(false);
+        circuitBreaker.reset();
+        log.info("DNS discovery cache invalidated");
+    }
+
+    public List<ClusterNodeAddress> getLastKnownAddresses() {
+        return lastKnownAddresses;
+    }
+
+    public String getCircuitBreakerState() {
+        return circuitBreaker.getState().name();
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the time of the last error in milliseconds since epoch, 0 if no error occurred yet
+     */
+    public long getLastErrorTimestamp() {
+        return lastErrorTimestamp;
+    }
+
+    /**
+     * @return the remaining time the negative answer for the discovery address is cached in milliseconds, 0 if none
+     */
+    public long getNegativeCacheRemainingMillis() {
+        if (negativeCacheAddress == null) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(negativeCacheExpiryNanos - System.nanoTime()));
+    }
+
+    private void recordError(final String error) {
+        errors.inc();
+        lastError = error;
+        lastErrorTimestamp = System.currentTimeMillis();
+    }
+
+    private boolean isNegativeAnswerCached(final String discoveryAddress) {
+        return discoveryAddress.equals(negativeCacheAddress) && negativeCacheExpiryNanos - System.nanoTime() > 0;
+    }
+
+    private void recordNegativeAnswer(final String discoveryAddress) {
+        negativeAnswers.inc();
+        lastKnownAddresses = Collections.emptyList();
+        final long cacheSeconds = Math.max(0, discoveryConfiguration.negativeCacheTtl());
+        negativeCacheAddress = discoveryAddress;
+        negativeCacheExpiryNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(cacheSeconds);
+        // only log the transition, the record may be missing for a long time while a service is created
+        if (negativeAnswer.compareAndSet(false, true)) {
+            log.warn("DNS record for address '{}' does not exist, caching the negative answer for {} seconds",
+                    discoveryAddress, cacheSeconds);
+        } else {
+            log.debug("DNS record for address '{}' still does not exist, caching the negative answer for {} seconds",
+                    discoveryAddress, cacheSeconds);
+        }
+    }
+
+    /**
+     * @return true while the discovery address is known not to exist, i.e. between the warning for the missing
+     * record and the info that it exists now
+     */
+    @VisibleForTesting
+    boolean isNegativeAnswer() {
+        return negativeAnswer.get();
+    }
+
     @Override
     public void destroy() {
         eventLoopGroup.shutdownGracefully();
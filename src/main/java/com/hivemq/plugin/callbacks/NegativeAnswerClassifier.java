@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hivemq.plugin.callbacks;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.resolver.dns.DnsNameResolverException;
+import io.netty.resolver.dns.DnsQueryLifecycleObserver;
+import io.netty.resolver.dns.DnsQueryLifecycleObserverFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Observes the queries of a single resolution to tell a record which does not exist apart from a failing DNS server,
+ * without sending another query.
+ * <p>
+ * A failed resolution is a negative answer if at least one query was answered with NXDOMAIN or without records
+ * and no query timed out, failed or was answered with another response code such as SERVFAIL or REFUSED.
+ *
+ * @author Simon Baier
+ */
+class NegativeAnswerClassifier implements DnsQueryLifecycleObserverFactory, DnsQueryLifecycleObserver {
+
+    private volatile boolean negativeAnswer;
+    private volatile boolean failure;
+
+    boolean isNegativeAnswer() {
+        return negativeAnswer && !failure;
+    }
+
+    @Override
+    public DnsQueryLifecycleObserver newDnsQueryLifecycleObserver(final DnsQuestion question) {
+        return this;
+    }
+
+    @Override
+    public void queryWritten(final InetSocketAddress dnsServerAddress, final ChannelFuture future) {
+        // NO-OP
+    }
+
+    @Override
+    public void queryCancelled(final int queriesRemaining) {
+        failure = true;
+    }
+
+    @Override
+    public DnsQueryLifecycleObserver queryRedirected(final List<InetSocketAddress> nameServers) {
+        return this;
+    }
+
+    @Override
+    public DnsQueryLifecycleObserver queryCNAMEd(final DnsQuestion cnameQuestion) {
+        return this;
+    }
+
+    @Override
+    public DnsQueryLifecycleObserver queryNoAnswer(final DnsResponseCode code) {
+        if (code == DnsResponseCode.NXDOMAIN || code == DnsResponseCode.NOERROR) {
+            negativeAnswer = true;
+        } else {
+            failure = true;
+        }
+        return this;
+    }
+
+    @Override
+    public void queryFailed(final Throwable cause) {
+        // timeouts and I/O errors, the resolver reports NXDOMAIN and answers without records as other failures
+        if (cause instanceof DnsNameResolverException || cause instanceof IOException) {
+            failure = true;
+        } else {
+            negativeAnswer = true;
+        }
+    }
+
+    @Override
+    public void querySucceed() {
+        // NO-OP
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.callbacks;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Selects a bounded, deterministic subset of peers for a node, so the discovery fan-out of large clusters
+ * does not grow with the cluster size.
+ * <p>
+ * Every node always keeps its successor and predecessor on a hash ring of all addresses, which keeps the cluster
+ * connected. The remaining slots are filled by rendezvous hashing on the own address, so the subset only changes
+ * when a joining node outranks a selected peer or a selected peer leaves.
+ *
+ * @author Simon Baier
+ */
+class PeerSubsetSelector {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private PeerSubsetSelector() {
+    }
+
+    /**
+     * @param ownAddress the address of this node
+     * @param addresses  all discovered addresses, may contain the own address
+     * @param subsetSize the maximum number of peers to return, the own address is not counted
+     * @return the selected addresses in discovery order, including the own address if it was discovered
+     */
+    static List<ClusterNodeAddress> select(final ClusterNodeAddress ownAddress,
+                                           final List<ClusterNodeAddress> addresses,
+                                           final int subsetSize) {
+        final String ownKey = key(ownAddress);
+        final List<ClusterNodeAddress> peers = addresses.stream()
+                .filter((address) -> !key(address).equals(ownKey))
+                .collect(Collectors.toList());
+        if (subsetSize <= 0 || peers.size() <= subsetSize) {
+            return addresses;
+        }
+
+        final Set<String> selected = new HashSet<>();
+
+        // ring neighbours, every node links to the next one so the cluster stays connected
+        final List<String> ring = new ArrayList<>();
+        ring.add(ownKey);
+        peers.forEach((peer) -> ring.add(key(peer)));
+        ring.sort(Comparator.comparingLong((String peer) -> hash(peer)).thenComparing(Comparator.naturalOrder()));
+        final int ownIndex = ring.indexOf(ownKey);
+        selected.add(ring.get((ownIndex + 1) % ring.size()));
+        if (subsetSize > 1) {
+            selected.add(ring.get((ownIndex + ring.size() - 1) % ring.size()));
+        }
+
+        // fill the remaining slots with the highest rendezvous scores for this node
+        final List<String> ranked = peers.stream()
+                .map(PeerSubsetSelector::key)
+                .sorted(Comparator.comparingLong((String peer) -> hash(ownKey + "|" + peer)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+        for (final String peer : ranked) {
+            if (selected.size() >= subsetSize) {
+                break;
+            }
+            selected.add(peer);
+        }
+
+        return addresses.stream()
+                .filter((address) -> key(address).equals(ownKey) || selected.contains(key(address)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return true if the own address is among the addresses, compared by host and port as in {@link #select}
+     */
+    static boolean contains(final List<ClusterNodeAddress> addresses, final ClusterNodeAddress ownAddress) {
+        final String ownKey = key(ownAddress);
+        return addresses.stream().anyMatch((address) -> key(address).equals(ownKey));
+    }
+
+    private static String key(final ClusterNodeAddress address) {
+        return address.getHost() + ":" + address.getPort();
+    }
+
+    private static long hash(final String value) {
+        return HASH.hashString(value, StandardCharsets.UTF_8).asLong();
+    }
+}
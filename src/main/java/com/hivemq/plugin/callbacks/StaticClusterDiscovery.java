@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.callbacks;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hivemq.spi.callback.cluster.ClusterDiscoveryCallback;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cluster discovery from a list of {@code host} or {@code host:port} entries, e.g. static seeds or a hosts file.
+ * Entries without a port use the cluster port of this node.
+ *
+ * @author Simon Baier
+ */
+class StaticClusterDiscovery implements ClusterDiscoveryCallback {
+    private static final Logger log = LoggerFactory.getLogger(StaticClusterDiscovery.class);
+
+    private final Supplier<List<String>> entries;
+    private ClusterNodeAddress ownAddress;
+
+    StaticClusterDiscovery(final Supplier<List<String>> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public void init(String clusterId, ClusterNodeAddress ownAddress) {
+        this.ownAddress = ownAddress;
+    }
+
+    @Override
+    public ListenableFuture<List<ClusterNodeAddress>> getNodeAddresses() {
+        final List<ClusterNodeAddress> clusterNodeAddresses = new ArrayList<>();
+        for (final String entry : entries.get()) {
+            final ClusterNodeAddress address = parse(entry, ownAddress.getPort());
+            if (address != null) {
+                clusterNodeAddresses.add(address);
+            }
+        }
+        return Futures.immediateFuture(clusterNodeAddresses);
+    }
+
+    @Override
+    public void destroy() {
+        // NO-OP
+    }
+
+    /**
+     * Parses {@code host}, {@code host:port} or {@code [ipv6]:port}.
+     *
+     * @return the address or null if the entry is malformed
+     */
+    static ClusterNodeAddress parse(final String entry, final int defaultPort) {
+        String host = entry;
+        String port = null;
+        if (entry.startsWith("[")) {
+            final int end = entry.indexOf(']');
+            if (end < 0) {
+                log.warn("Ignoring malformed cluster node address '{}'", entry);
+                return null;
+            }
+            host = entry.substring(1, end);
+            if (entry.length() > end + 1) {
+                if (entry.charAt(end + 1) != ':') {
+                    log.warn("Ignoring malformed cluster node address '{}'", entry);
+                    return null;
+                }
+                port = entry.substring(end + 2);
+            }
+        } else if (entry.indexOf(':') >= 0 && entry.indexOf(':') == entry.lastIndexOf(':')) {
+            host = entry.substring(0, entry.indexOf(':'));
+            port = entry.substring(entry.indexOf(':') + 1);
+        }
+        if (host.isEmpty()) {
+            log.warn("Ignoring malformed cluster node address '{}'", entry);
+            return null;
+        }
+        if (port == null) {
+            return new ClusterNodeAddress(host, defaultPort);
+        }
+        try {
+            return new ClusterNodeAddress(host, Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring cluster node address '{}' with invalid port", entry);
+            return null;
+        }
+    }
+}
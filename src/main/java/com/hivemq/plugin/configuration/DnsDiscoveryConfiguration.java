@@ -24,6 +24,9 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -41,9 +44,31 @@ public class DnsDiscoveryConfiguration extends ReloadingPropertiesReader {
     private static final String RESOLUTION_TIMEOUT_PROPERTY = "resolutionTimeout";
     private static final String DISCOVERY_ADDRESS_ENV = "HIVEMQ_DNS_DISCOVERY_ADDRESS";
     private static final String DISCOVERY_TIMEOUT_ENV = "HIVEMQ_DNS_DISCOVERY_TIMEOUT";
+    private static final String CIRCUIT_BREAKER_THRESHOLD_PROPERTY = "circuitBreakerFailureThreshold";
+    private static final String CIRCUIT_BREAKER_BACKOFF_PROPERTY = "circuitBreakerBackoff";
+    private static final String CIRCUIT_BREAKER_MAX_BACKOFF_PROPERTY = "circuitBreakerMaxBackoff";
+    private static final String CIRCUIT_BREAKER_THRESHOLD_ENV = "HIVEMQ_DNS_DISCOVERY_CIRCUIT_BREAKER_THRESHOLD";
+    private static final String CIRCUIT_BREAKER_BACKOFF_ENV = "HIVEMQ_DNS_DISCOVERY_CIRCUIT_BREAKER_BACKOFF";
+    private static final String CIRCUIT_BREAKER_MAX_BACKOFF_ENV = "HIVEMQ_DNS_DISCOVERY_CIRCUIT_BREAKER_MAX_BACKOFF";
+    private static final String STATIC_SEEDS_PROPERTY = "staticSeeds";
+    private static final String STATIC_SEEDS_ENV = "HIVEMQ_DNS_DISCOVERY_STATIC_SEEDS";
+    private static final String PEER_SUBSET_SIZE_PROPERTY = "peerSubsetSize";
+    private static final String PEER_SUBSET_SIZE_ENV = "HIVEMQ_DNS_DISCOVERY_PEER_SUBSET_SIZE";
+    private static final String NEGATIVE_CACHE_TTL_PROPERTY = "negativeCacheTtl";
+    private static final String NEGATIVE_CACHE_TTL_ENV = "HIVEMQ_DNS_DISCOVERY_NEGATIVE_CACHE_TTL";
 
     /* How long we wait before failing the dns resolution */
     private static final int DEFAULT_DISCOVERY_TIMEOUT = 30;
+    /* How many consecutive failed resolutions open the circuit breaker, 0 disables it */
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 3;
+    /* How long (in seconds) the circuit breaker stays open before the first probe */
+    private static final int DEFAULT_CIRCUIT_BREAKER_BACKOFF = 5;
+    /* Upper bound (in seconds) for the exponentially growing open period */
+    private static final int DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF = 120;
+    /* How many peers are returned to HiveMQ at most, 0 returns all discovered addresses */
+    private static final int DEFAULT_PEER_SUBSET_SIZE = 0;
+    /* Upper bound (in seconds) for caching a non-existing discovery record, 0 disables the negative cache */
+    private static final int DEFAULT_NEGATIVE_CACHE_TTL = 30;
 
     private RestartListener listener;
 
@@ -99,6 +124,73 @@ public class DnsDiscoveryConfiguration extends ReloadingPropertiesReader {
         }
     }
 
+    public int circuitBreakerFailureThreshold() {
+        return intValue(CIRCUIT_BREAKER_THRESHOLD_PROPERTY, CIRCUIT_BREAKER_THRESHOLD_ENV, DEFAULT_CIRCUIT_BREAKER_THRESHOLD);
+    }
+
+    public int circuitBreakerBackoff() {
+        return intValue(CIRCUIT_BREAKER_BACKOFF_PROPERTY, CIRCUIT_BREAKER_BACKOFF_ENV, DEFAULT_CIRCUIT_BREAKER_BACKOFF);
+    }
+
+    public int circuitBreakerMaxBackoff() {
+        return intValue(CIRCUIT_BREAKER_MAX_BACKOFF_PROPERTY, CIRCUIT_BREAKER_MAX_BACKOFF_ENV, DEFAULT_CIRCUIT_BREAKER_MAX_BACKOFF);
+    }
+
+    public int negativeCacheTtl() {
+        return intValue(NEGATIVE_CACHE_TTL_PROPERTY, NEGATIVE_CACHE_TTL_ENV, DEFAULT_NEGATIVE_CACHE_TTL);
+    }
+
+    public int peerSubsetSize() {
+        return intValue(PEER_SUBSET_SIZE_PROPERTY, PEER_SUBSET_SIZE_ENV, DEFAULT_PEER_SUBSET_SIZE);
+    }
+
+    /**
+     * @return the comma separated list of seed nodes in the form {@code host} or {@code host:port}
+     */
+    public List<String> staticSeeds() {
+        final String value = stringValue(STATIC_SEEDS_PROPERTY, STATIC_SEEDS_ENV);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        final List<String> seeds = new ArrayList<>();
+        for (final String seed : value.split(",")) {
+            if (!seed.trim().isEmpty()) {
+                seeds.add(seed.trim());
+            }
+        }
+        return seeds;
+    }
+
+    /**
+     * Reads an optional setting from the configuration file, falling back to the environment variable.
+     *
+     * @return the configured value or null if it is not set in either place
+     */
+    private String stringValue(final String propertyKey, final String environmentVariable) {
+        final String value = isPropertiesEnabled() ? properties.getProperty(propertyKey) : null;
+        if (value != null && !value.isEmpty()) {
+            return value;
+        }
+        final String env = System.getenv(environmentVariable);
+        if (env != null && !env.isEmpty()) {
+            return env;
+        }
+        return null;
+    }
+
+    private int intValue(final String propertyKey, final String environmentVariable, final int defaultValue) {
+        final String value = stringValue(propertyKey, environmentVariable);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("Invalid format {} for DNS discovery property {}, using default: {}", value, propertyKey, defaultValue);
+            return defaultValue;
+        }
+    }
+
     @Override
     public String getFilename() {
         return "dnsdiscovery.properties";
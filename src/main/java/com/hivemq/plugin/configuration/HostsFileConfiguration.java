@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hivemq.plugin.configuration;
+
+import com.hivemq.spi.config.SystemInformation;
+import com.hivemq.spi.services.PluginExecutorService;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Reads the list of cluster node addresses from the optional hosts file, which is reloaded on changes.
+ * Every line contains a host, optionally followed by {@code =port}. As in any properties file, the colons of
+ * IPv6 addresses have to be escaped, e.g. {@code fe80\:\:1=7800}.
+ * <p>
+ * The file is polled even while it does not exist, a missing file is treated as an empty list.
+ *
+ * @author Simon Baier
+ */
+@Singleton
+public class HostsFileConfiguration extends ReloadingPropertiesReader {
+
+    @Inject
+    public HostsFileConfiguration(final PluginExecutorService pluginExecutorService,
+                                  final SystemInformation systemInformation) {
+        super(pluginExecutorService, systemInformation);
+    }
+
+    @Override
+    @PostConstruct
+    public void postConstruct() {
+        super.postConstruct();
+    }
+
+    /**
+     * @return the hosts in the form {@code host} or {@code host:port} ({@code [host]:port} for IPv6 addresses),
+     * empty if the file does not exist
+     */
+    public List<String> hosts() {
+        final Properties hosts = properties;
+        if (hosts == null) {
+            return Collections.emptyList();
+        }
+        final List<String> entries = new ArrayList<>();
+        for (final String host : hosts.stringPropertyNames()) {
+            if (host.isEmpty()) {
+                continue;
+            }
+            final String port = hosts.getProperty(host).trim();
+            if (port.isEmpty()) {
+                entries.add(host);
+            } else {
+                entries.add(host.indexOf(':') >= 0 && !host.startsWith("[") ? "[" + host + "]:" + port : host + ":" + port);
+            }
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    @Override
+    public String getFilename() {
+        return "dnsdiscovery-hosts.properties";
+    }
+
+    @Override
+    protected boolean isOptional() {
+        return true;
+    }
+}
@@ -57,12 +57,20 @@ abstract class ReloadingPropertiesReader {
     public void postConstruct() {
         file = new File(systemInformation.getConfigFolder() + "/" + getFilename());
 
-        try {
-            properties = new Properties();
-            properties.load(new FileReader(file));
-        } catch (IOException e) {
-            log.warn("Not able to load configuration file {}, disabling (assuming environment variable used)", file.getAbsolutePath());
-            propertiesEnabled = false;
+        properties = new Properties();
+        if (isOptional() && !file.exists()) {
+            log.debug("Optional configuration file {} does not exist", file.getAbsolutePath());
+        } else {
+            try {
+                properties.load(new FileReader(file));
+            } catch (IOException e) {
+                if (isOptional()) {
+                    log.warn("Not able to load configuration file {}", file.getAbsolutePath());
+                } else {
+                    log.warn("Not able to load configuration file {}, disabling (assuming environment variable used)", file.getAbsolutePath());
+                    propertiesEnabled = false;
+                }
+            }
         }
 
         if (propertiesEnabled) {
@@ -81,6 +89,15 @@ abstract class ReloadingPropertiesReader {
     @NotNull
     public abstract String getFilename();
 
+    /**
+     * Optional files may be missing, they are polled anyway and a missing file is read as empty properties.
+     *
+     * @return true if the file is optional, false if a missing file disables the properties
+     */
+    protected boolean isOptional() {
+        return false;
+    }
+
     /**
      * Reloads the specified .properties file
      */
@@ -89,6 +106,12 @@ abstract class ReloadingPropertiesReader {
 
         Map<String, String> oldValues = getCurrentValues();
 
+        if (isOptional() && !file.exists()) {
+            properties = new Properties();
+            logChanges(oldValues, getCurrentValues());
+            return;
+        }
+
         try {
             final Properties props = new Properties();
             props.load(new FileReader(file));
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.diagnostics;
+
+import com.codahale.metrics.Snapshot;
+import com.hivemq.plugin.callbacks.CompositeClusterDiscovery;
+import com.hivemq.plugin.callbacks.DnsClusterDiscovery;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exposes the state of the cluster discovery via JMX and allows to refresh it without restarting the broker.
+ *
+ * @author Simon Baier
+ */
+@Singleton
+public class DnsDiscoveryDiagnostics implements DnsDiscoveryDiagnosticsMXBean {
+    private static final Logger log = LoggerFactory.getLogger(DnsDiscoveryDiagnostics.class);
+    public static final String OBJECT_NAME = "com.hivemq.plugin:type=DnsDiscovery,name=Diagnostics";
+
+    private final CompositeClusterDiscovery clusterDiscovery;
+    private final DnsClusterDiscovery dnsClusterDiscovery;
+    private final DnsDiscoveryConfiguration discoveryConfiguration;
+
+    @Inject
+    public DnsDiscoveryDiagnostics(final CompositeClusterDiscovery clusterDiscovery,
+                                   final DnsClusterDiscovery dnsClusterDiscovery,
+                                   final DnsDiscoveryConfiguration discoveryConfiguration) {
+        this.clusterDiscovery = clusterDiscovery;
+        this.dnsClusterDiscovery = dnsClusterDiscovery;
+        this.discoveryConfiguration = discoveryConfiguration;
+    }
+
+    /**
+     * Registers this MBean on the platform MBean server, replacing a previously registered instance.
+     */
+    public void register() {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+            mBeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            log.warn("Not able to register DNS discovery diagnostics MBean, error: '{}'", e.getMessage());
+        }
+    }
+
+    public void unregister() {
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Not able to unregister DNS discovery diagnostics MBean, error: '{}'", e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, String> getConfiguration() {
+        final Map<String, String> configuration = new LinkedHashMap<>();
+        configuration.put("discoveryAddress", discoveryConfiguration.discoveryAddress());
+        configuration.put("resolutionTimeout", String.valueOf(discoveryConfiguration.resolutionTimeout()));
+        configuration.put("staticSeeds", String.join(",", discoveryConfiguration.staticSeeds()));
+        configuration.put("negativeCacheTtl", String.valueOf(discoveryConfiguration.negativeCacheTtl()));
+        configuration.put("peerSubsetSize", String.valueOf(discoveryConfiguration.peerSubsetSize()));
+        configuration.put("circuitBreakerFailureThreshold", String.valueOf(discoveryConfiguration.circuitBreakerFailureThreshold()));
+        configuration.put("circuitBreakerBackoff", String.valueOf(discoveryConfiguration.circuitBreakerBackoff()));
+        configuration.put("circuitBreakerMaxBackoff", String.valueOf(discoveryConfiguration.circuitBreakerMaxBackoff()));
+        return configuration;
+    }
+
+    @Override
+    public List<String> getLastMembership() {
+        return toStrings(clusterDiscovery.getLastMembership());
+    }
+
+    @Override
+    public String getLastMembershipTimestamp() {
+        return toTimestamp(clusterDiscovery.getLastMembershipTimestamp());
+    }
+
+    @Override
+    public String getLastMembershipChangeTimestamp() {
+        return toTimestamp(clusterDiscovery.getLastMembershipChangeTimestamp());
+    }
+
+    @Override
+    public String getLastError() {
+        return dnsClusterDiscovery.getLastError();
+    }
+
+    @Override
+    public String getLastErrorTimestamp() {
+        return toTimestamp(dnsClusterDiscovery.getLastErrorTimestamp());
+    }
+
+    @Override
+    public long getRoundCount() {
+        return clusterDiscovery.getRoundTimer().getCount();
+    }
+
+    @Override
+    public double getRoundLatencyMedianMillis() {
+        return toMillis(roundLatency().getMedian());
+    }
+
+    @Override
+    public double getRoundLatency95thPercentileMillis() {
+        return toMillis(roundLatency().get95thPercentile());
+    }
+
+    @Override
+    public double getRoundLatency99thPercentileMillis() {
+        return toMillis(roundLatency().get99thPercentile());
+    }
+
+    @Override
+    public double getRoundLatencyMaxMillis() {
+        return toMillis(roundLatency().getMax());
+    }
+
+    @Override
+    public String getCircuitBreakerState() {
+        return dnsClusterDiscovery.getCircuitBreakerState();
+    }
+
+    @Override
+    public List<String> getCachedAddresses() {
+        return toStrings(dnsClusterDiscovery.getLastKnownAddresses());
+    }
+
+    @Override
+    public long getNegativeCacheRemainingSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(dnsClusterDiscovery.getNegativeCacheRemainingMillis());
+    }
+
+    @Override
+    public List<String> refresh() {
+        log.info("Cluster discovery refresh requested via JMX");
+        // without the cache and the circuit breaker the DNS server is queried in any case
+        dnsClusterDiscovery.invalidateCache();
+        // give the slowest source the full resolution timeout plus some slack for the other sources
+        final int timeout = discoveryConfiguration.resolutionTimeout() + 5;
+        try {
+            return toStrings(clusterDiscovery.refreshRound().get(timeout, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while refreshing cluster discovery");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Cluster discovery refresh failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void invalidateCache() {
+        dnsClusterDiscovery.invalidateCache();
+    }
+
+    private Snapshot roundLatency() {
+        return clusterDiscovery.getRoundTimer().getSnapshot();
+    }
+
+    private static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String toTimestamp(final long epochMillis) {
+        return epochMillis == 0 ? null : Instant.ofEpochMilli(epochMillis).toString();
+    }
+
+    private static List<String> toStrings(final List<ClusterNodeAddress> addresses) {
+        final List<String> strings = new ArrayList<>();
+        addresses.forEach((address) -> strings.add(address.getHost() + ":" + address.getPort()));
+        return strings;
+    }
+}
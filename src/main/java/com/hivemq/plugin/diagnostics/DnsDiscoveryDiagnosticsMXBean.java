@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 dc-square GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.hivemq.plugin.diagnostics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JMX interface for inspecting the cluster discovery of a running broker.
+ * Timestamps are ISO-8601 strings, null if the event did not happen yet.
+ *
+ * @author Simon Baier
+ */
+public interface DnsDiscoveryDiagnosticsMXBean {
+
+    Map<String, String> getConfiguration();
+
+    List<String> getLastMembership();
+
+    String getLastMembershipTimestamp();
+
+    String getLastMembershipChangeTimestamp();
+
+    String getLastError();
+
+    String getLastErrorTimestamp();
+
+    long getRoundCount();
+
+    double getRoundLatencyMedianMillis();
+
+    double getRoundLatency95thPercentileMillis();
+
+    double getRoundLatency99thPercentileMillis();
+
+    double getRoundLatencyMaxMillis();
+
+    String getCircuitBreakerState();
+
+    List<String> getCachedAddresses();
+
+    long getNegativeCacheRemainingSeconds();
+
+    /**
+     * Invalidates the DNS cache like {@link #invalidateCache()} and runs a discovery round, waiting for its result.
+     * The DNS server is queried even if a negative answer was cached or the circuit breaker was open, and the
+     * cached addresses, negative answer and circuit breaker reflect its answer afterwards. The result is returned
+     * to the caller only, HiveMQ picks up the refreshed state with its next poll. The round is not recorded in the
+     * round statistics or the last membership.
+     *
+     * @return the discovered addresses
+     */
+    List<String> refresh();
+
+    /**
+     * Forgets the cached DNS addresses and negative answer and closes the circuit breaker.
+     */
+    void invalidateCache();
+}
@@ -16,8 +16,11 @@
 
 package com.hivemq.plugin.plugin;
 
-import com.hivemq.plugin.callbacks.DnsClusterDiscovery;
+import com.hivemq.plugin.callbacks.CompositeClusterDiscovery;
+import com.hivemq.plugin.diagnostics.DnsDiscoveryDiagnostics;
 import com.hivemq.spi.PluginEntryPoint;
+import com.hivemq.spi.callback.CallbackPriority;
+import com.hivemq.spi.callback.events.broker.OnBrokerStop;
 import com.hivemq.spi.callback.registry.CallbackRegistry;
 
 import javax.annotation.PostConstruct;
@@ -25,12 +28,15 @@ import javax.inject.Inject;
 
 public class DnsDiscoveryPluginMainClass extends PluginEntryPoint {
 
-    private final DnsClusterDiscovery dnsClusterDiscovery;
+    private final CompositeClusterDiscovery clusterDiscovery;
+    private final DnsDiscoveryDiagnostics diagnostics;
 
 
     @Inject
-    public DnsDiscoveryPluginMainClass(final DnsClusterDiscovery dnsClusterDiscovery) {
-        this.dnsClusterDiscovery = dnsClusterDiscovery;
+    public DnsDiscoveryPluginMainClass(final CompositeClusterDiscovery clusterDiscovery,
+                                       final DnsDiscoveryDiagnostics diagnostics) {
+        this.clusterDiscovery = clusterDiscovery;
+        this.diagnostics = diagnostics;
     }
 
     /**
@@ -41,7 +47,19 @@ public class DnsDiscoveryPluginMainClass extends PluginEntryPoint {
     @PostConstruct
     public void postConstruct() {
         CallbackRegistry callbackRegistry = getCallbackRegistry();
-        callbackRegistry.addCallback(dnsClusterDiscovery);
+        callbackRegistry.addCallback(clusterDiscovery);
+        diagnostics.register();
+        callbackRegistry.addCallback(new OnBrokerStop() {
+            @Override
+            public void onBrokerStop() {
+                diagnostics.unregister();
+            }
+
+            @Override
+            public int priority() {
+                return CallbackPriority.LOW;
+            }
+        });
     }
 
 }
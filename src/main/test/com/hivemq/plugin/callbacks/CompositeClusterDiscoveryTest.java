@@ -0,0 +1,138 @@
+package com.hivemq.plugin.callbacks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.hivemq.spi.callback.cluster.ClusterDiscoveryCallback;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CompositeClusterDiscoveryTest {
+
+    @Mock
+    ClusterDiscoveryCallback dnsSource;
+
+    private CompositeClusterDiscovery clusterDiscovery;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        clusterDiscovery = new CompositeClusterDiscovery(ImmutableMap.of(
+                "dns", dnsSource,
+                "static", new StaticClusterDiscovery(() -> Lists.newArrayList("10.0.0.1", "10.0.0.2:7800"))),
+                () -> 0,
+                metricRegistry);
+        clusterDiscovery.init(null, new ClusterNodeAddress("10.0.0.1", 12345));
+    }
+
+    @Test
+    public void test_merge_and_deduplicate() throws Exception {
+        when(dnsSource.getNodeAddresses()).thenReturn(Futures.immediateFuture(Lists.newArrayList(
+                new ClusterNodeAddress("10.0.0.1", 12345),
+                new ClusterNodeAddress("10.0.0.3", 12345))));
+
+        final List<ClusterNodeAddress> addresses = clusterDiscovery.getNodeAddresses().get();
+
+        assertEquals(3, addresses.size());
+        assertEquals("10.0.0.1", addresses.get(0).getHost());
+        assertEquals("10.0.0.3", addresses.get(1).getHost());
+        assertEquals("10.0.0.2", addresses.get(2).getHost());
+        assertEquals(7800, addresses.get(2).getPort());
+        assertEquals(1, metricRegistry.timer("com.hivemq.plugin.dns-discovery.source.dns.latency").getCount());
+        assertEquals(1, metricRegistry.timer("com.hivemq.plugin.dns-discovery.source.static.latency").getCount());
+    }
+
+    @Test
+    public void test_failed_source_is_skipped() throws Exception {
+        when(dnsSource.getNodeAddresses()).thenReturn(
+                Futures.immediateFailedFuture(new IllegalStateException("DNS down")));
+
+        final List<ClusterNodeAddress> addresses = clusterDiscovery.getNodeAddresses().get();
+
+        assertEquals(2, addresses.size());
+    }
+
+    @Test
+    public void test_last_membership_is_recorded() throws Exception {
+        when(dnsSource.getNodeAddresses()).thenReturn(Futures.immediateFuture(Lists.newArrayList(
+                new ClusterNodeAddress("10.0.0.3", 12345))));
+
+        assertEquals(0, clusterDiscovery.getLastMembershipTimestamp());
+        clusterDiscovery.getNodeAddresses().get();
+        final long changed = clusterDiscovery.getLastMembershipChangeTimestamp();
+
+        assertEquals(3, clusterDiscovery.getLastMembership().size());
+        assertEquals(1, clusterDiscovery.getRoundTimer().getCount());
+        assertTrue(changed > 0);
+
+        Thread.sleep(5);
+        clusterDiscovery.getNodeAddresses().get();
+
+        assertEquals(changed, clusterDiscovery.getLastMembershipChangeTimestamp());
+        assertTrue(clusterDiscovery.getLastMembershipTimestamp() > changed);
+    }
+
+    @Test
+    public void test_refresh_round_is_not_recorded() throws Exception {
+        when(dnsSource.getNodeAddresses()).thenReturn(Futures.immediateFuture(Lists.newArrayList(
+                new ClusterNodeAddress("10.0.0.3", 12345))));
+
+        final List<ClusterNodeAddress> addresses = clusterDiscovery.refreshRound().get();
+
+        assertEquals(3, addresses.size());
+        assertEquals(0, clusterDiscovery.getRoundTimer().getCount());
+        assertEquals(0, clusterDiscovery.getLastMembershipTimestamp());
+        assertTrue(clusterDiscovery.getLastMembership().isEmpty());
+        assertEquals(0, metricRegistry.timer("com.hivemq.plugin.dns-discovery.source.dns.latency").getCount());
+    }
+
+    @Test
+    public void test_own_address_not_discovered() throws Exception {
+        final List<String> seeds = Lists.newArrayList("10.0.0.2", "10.0.0.3");
+        final CompositeClusterDiscovery subsetDiscovery = new CompositeClusterDiscovery(ImmutableMap.of(
+                "dns", dnsSource,
+                "static", new StaticClusterDiscovery(() -> seeds)),
+                () -> 1,
+                metricRegistry);
+        // the cluster transport is bound to a host name, the sources return IPs
+        subsetDiscovery.init(null, new ClusterNodeAddress("node1.hivemq.local", 12345));
+        when(dnsSource.getNodeAddresses()).thenReturn(Futures.immediateFuture(Lists.newArrayList(
+                new ClusterNodeAddress("10.0.0.1", 12345))));
+
+        assertEquals(1, subsetDiscovery.getNodeAddresses().get().size());
+        assertTrue(subsetDiscovery.isOwnAddressMissing());
+
+        // the warning is only logged when the flag is set, it stays set for further rounds
+        subsetDiscovery.getNodeAddresses().get();
+        assertTrue(subsetDiscovery.isOwnAddressMissing());
+
+        seeds.add("node1.hivemq.local");
+        subsetDiscovery.getNodeAddresses().get();
+        assertFalse(subsetDiscovery.isOwnAddressMissing());
+    }
+
+    @Test
+    public void test_own_address_ignored_without_subset() throws Exception {
+        when(dnsSource.getNodeAddresses()).thenReturn(Futures.immediateFuture(Lists.newArrayList(
+                new ClusterNodeAddress("10.0.0.3", 12345))));
+        clusterDiscovery.init(null, new ClusterNodeAddress("node1.hivemq.local", 12345));
+
+        clusterDiscovery.getNodeAddresses().get();
+
+        assertFalse(clusterDiscovery.isOwnAddressMissing());
+    }
+}
@@ -0,0 +1,131 @@
+package com.hivemq.plugin.callbacks;
+
+import com.google.common.base.Ticker;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DnsCircuitBreakerTest {
+
+    @Mock
+    DnsDiscoveryConfiguration configuration;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private DnsCircuitBreaker circuitBreaker;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(3);
+        when(configuration.circuitBreakerBackoff()).thenReturn(10);
+        when(configuration.circuitBreakerMaxBackoff()).thenReturn(60);
+        when(configuration.resolutionTimeout()).thenReturn(5);
+
+        circuitBreaker = new DnsCircuitBreaker(configuration, new Ticker() {
+            @Override
+            public long read() {
+                return now.get();
+            }
+        });
+    }
+
+    @Test
+    public void test_opens_after_consecutive_failures() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordFailure();
+        assertEquals(DnsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_success_resets_failure_count() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+
+        assertEquals(DnsCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void test_half_open_allows_single_probe() {
+        openBreaker();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(DnsCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.recordSuccess();
+        assertEquals(DnsCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_failed_probe_reopens_with_longer_backoff() {
+        openBreaker();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.recordFailure();
+        assertEquals(DnsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // second open period is between 10 and 20 seconds
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertFalse(circuitBreaker.allowRequest());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_lost_probe_reopens_breaker() {
+        openBreaker();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertTrue(circuitBreaker.allowRequest());
+
+        // the probe never reports back
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertFalse(circuitBreaker.allowRequest());
+        assertEquals(DnsCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertFalse(circuitBreaker.allowRequest());
+        assertEquals(DnsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    @Test
+    public void test_disabled_with_zero_threshold() {
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(0);
+
+        for (int i = 0; i < 10; i++) {
+            circuitBreaker.recordFailure();
+        }
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(DnsCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void openBreaker() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(DnsCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+}
@@ -1,15 +1,27 @@
 package com.hivemq.plugin.callbacks;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import com.hivemq.plugin.diagnostics.DnsDiscoveryDiagnostics;
 import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import com.hivemq.spi.services.MetricService;
 import com.hivemq.spi.services.PluginExecutorService;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.resolver.dns.DnsServerAddressStreamProvider;
+import io.netty.resolver.dns.SequentialDnsServerAddressStreamProvider;
+import io.netty.resolver.dns.SingletonDnsServerAddressStreamProvider;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.stubbing.Answer;
 
+import java.net.InetAddress;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -17,12 +29,17 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 public class DnsClusterDiscoveryTest {
 
+    private static final String STUB_ADDRESS = "cluster.hivemq.local";
+
     DnsClusterDiscovery dnsClusterDiscovery;
 
     @Mock
@@ -31,14 +48,37 @@ public class DnsClusterDiscoveryTest {
     @Mock
     DnsDiscoveryConfiguration configuration;
 
+    @Mock
+    MetricService metricService;
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    /* discovery against the in-process stub DNS server, rounds run synchronously */
+    private DnsStubServer dnsServer;
+    private DnsClusterDiscovery stubDiscovery;
+
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         initMocks(this);
 
-        dnsClusterDiscovery = new DnsClusterDiscovery(pluginExecutorService, configuration);
+        when(metricService.getMetricRegistry()).thenReturn(new MetricRegistry());
+        dnsClusterDiscovery = new DnsClusterDiscovery(pluginExecutorService, configuration, metricService);
 
         // need to init so dns resolver works in the tests
         dnsClusterDiscovery.init(null, new ClusterNodeAddress("127.0.0.1", 12345));
+
+        when(configuration.discoveryAddress()).thenReturn(STUB_ADDRESS);
+        when(configuration.resolutionTimeout()).thenReturn(5);
+        when(pluginExecutorService.submit(any(Callable.class))).thenAnswer(invocation ->
+                Futures.immediateFuture(((Callable<?>) invocation.getArguments()[0]).call()));
+        dnsServer = new DnsStubServer(STUB_ADDRESS);
+        stubDiscovery = stubDiscovery(new SingletonDnsServerAddressStreamProvider(dnsServer.address()), metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        stubDiscovery.destroy();
+        dnsServer.close();
     }
 
     @Test
@@ -83,4 +123,165 @@ public class DnsClusterDiscoveryTest {
 
         assertEquals(0, result.get().size());
     }
+
+    @Test
+    public void testNegativeAnswerIsCached() throws Exception {
+        when(configuration.discoveryAddress()).thenReturn("missing.hivemq.local");
+        when(configuration.negativeCacheTtl()).thenReturn(30);
+        // a negative answer must not count as failure, a single failure would open the breaker
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+        final long queries = dnsServer.queryCount();
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+
+        // the second round is answered from the negative cache
+        assertEquals(queries, dnsServer.queryCount());
+        assertTrue(stubDiscovery.getNegativeCacheRemainingMillis() > 0);
+        assertTrue(stubDiscovery.getNegativeCacheRemainingMillis() <= TimeUnit.SECONDS.toMillis(30));
+        assertEquals("CLOSED", stubDiscovery.getCircuitBreakerState());
+        assertEquals(1, metricRegistry.counter(DnsClusterDiscovery.NEGATIVE_ANSWERS_METRIC).getCount());
+        assertEquals(0, metricRegistry.counter(DnsClusterDiscovery.ERRORS_METRIC).getCount());
+    }
+
+    @Test
+    public void testNegativeAnswerCacheDisabled() throws Exception {
+        when(configuration.discoveryAddress()).thenReturn("missing.hivemq.local");
+        when(configuration.negativeCacheTtl()).thenReturn(0);
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+        final long queries = dnsServer.queryCount();
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+
+        assertTrue(dnsServer.queryCount() > queries);
+        assertEquals(0, stubDiscovery.getNegativeCacheRemainingMillis());
+        assertEquals("CLOSED", stubDiscovery.getCircuitBreakerState());
+        assertEquals(2, metricRegistry.counter(DnsClusterDiscovery.NEGATIVE_ANSWERS_METRIC).getCount());
+    }
+
+    @Test
+    public void testNegativeAnswerTransitions() throws Exception {
+        // never cache, so every round queries the DNS server, which answers without records
+        when(configuration.negativeCacheTtl()).thenReturn(0);
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+
+        // the warning is logged when the flag is set, the info when it is cleared
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+            assertTrue(stubDiscovery.isNegativeAnswer());
+        }
+
+        dnsServer.setRecords(Collections.singletonList(InetAddress.getByName("10.0.0.5")));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(1, stubDiscovery.getNodeAddresses().get().size());
+            assertFalse(stubDiscovery.isNegativeAnswer());
+        }
+
+        dnsServer.setRecords(Collections.emptyList());
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+        assertTrue(stubDiscovery.isNegativeAnswer());
+
+        stubDiscovery.invalidateCache();
+        assertFalse(stubDiscovery.isNegativeAnswer());
+        assertEquals(4, metricRegistry.counter(DnsClusterDiscovery.NEGATIVE_ANSWERS_METRIC).getCount());
+        assertEquals("CLOSED", stubDiscovery.getCircuitBreakerState());
+    }
+
+    @Test
+    public void testServerFailureIsAnError() throws Exception {
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+        when(configuration.circuitBreakerBackoff()).thenReturn(60);
+        when(configuration.circuitBreakerMaxBackoff()).thenReturn(60);
+        dnsServer.setResponseCode(DnsResponseCode.SERVFAIL);
+
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+
+        assertEquals("OPEN", stubDiscovery.getCircuitBreakerState());
+        assertFalse(stubDiscovery.isNegativeAnswer());
+        assertEquals(1, metricRegistry.counter(DnsClusterDiscovery.ERRORS_METRIC).getCount());
+        assertEquals(0, metricRegistry.counter(DnsClusterDiscovery.NEGATIVE_ANSWERS_METRIC).getCount());
+    }
+
+    @Test
+    public void testLastKnownAddressesServedWhileCircuitBreakerOpen() throws Exception {
+        when(configuration.resolutionTimeout()).thenReturn(1);
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+        when(configuration.circuitBreakerBackoff()).thenReturn(60);
+        when(configuration.circuitBreakerMaxBackoff()).thenReturn(60);
+        dnsServer.setRecords(Collections.singletonList(InetAddress.getByName("10.0.0.5")));
+
+        assertEquals("10.0.0.5", stubDiscovery.getNodeAddresses().get().get(0).getHost());
+
+        // the DNS server stops answering, the timed out round opens the breaker
+        dnsServer.setLossRate(1.0);
+        assertEquals("10.0.0.5", stubDiscovery.getNodeAddresses().get().get(0).getHost());
+        assertEquals("OPEN", stubDiscovery.getCircuitBreakerState());
+
+        final long queries = dnsServer.queryCount();
+        for (int i = 0; i < 5; i++) {
+            assertEquals("10.0.0.5", stubDiscovery.getNodeAddresses().get().get(0).getHost());
+        }
+        assertEquals(queries, dnsServer.queryCount());
+    }
+
+    @Test
+    public void testFailoverToSecondNameServer() throws Exception {
+        // the resolver gives up on the first name server after its query timeout of 5 seconds
+        when(configuration.resolutionTimeout()).thenReturn(15);
+        dnsServer.setRecords(Collections.singletonList(InetAddress.getByName("10.0.0.5")));
+
+        try (DnsStubServer unreachable = new DnsStubServer(STUB_ADDRESS)) {
+            unreachable.setLossRate(1.0);
+            final DnsClusterDiscovery discovery = stubDiscovery(
+                    new SequentialDnsServerAddressStreamProvider(unreachable.address(), dnsServer.address()),
+                    new MetricRegistry());
+            try {
+                assertEquals("10.0.0.5", discovery.getNodeAddresses().get().get(0).getHost());
+                assertTrue(unreachable.queryCount() > 0);
+            } finally {
+                discovery.destroy();
+            }
+        }
+    }
+
+    @Test
+    public void testRefreshQueriesDnsServerDespiteCache() throws Exception {
+        when(configuration.negativeCacheTtl()).thenReturn(30);
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(1);
+        final CompositeClusterDiscovery clusterDiscovery = new CompositeClusterDiscovery(
+                ImmutableMap.of("dns", stubDiscovery), () -> 0, new MetricRegistry());
+        clusterDiscovery.init(null, new ClusterNodeAddress("127.0.0.1", 12345));
+        final DnsDiscoveryDiagnostics diagnostics = new DnsDiscoveryDiagnostics(clusterDiscovery, stubDiscovery, configuration);
+
+        // the record does not exist yet, the negative answer is cached
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+        assertTrue(stubDiscovery.isNegativeAnswer());
+
+        dnsServer.setRecords(Collections.singletonList(InetAddress.getByName("10.0.0.5")));
+        final long queries = dnsServer.queryCount();
+        assertEquals(0, stubDiscovery.getNodeAddresses().get().size());
+        assertEquals(queries, dnsServer.queryCount());
+
+        assertEquals(Collections.singletonList("10.0.0.5:12345"), diagnostics.refresh());
+        assertTrue(dnsServer.queryCount() > queries);
+        assertFalse(stubDiscovery.isNegativeAnswer());
+        assertEquals(0, stubDiscovery.getNegativeCacheRemainingMillis());
+        assertEquals("CLOSED", stubDiscovery.getCircuitBreakerState());
+        assertEquals("10.0.0.5", stubDiscovery.getLastKnownAddresses().get(0).getHost());
+        assertEquals(0, clusterDiscovery.getRoundTimer().getCount());
+
+        // HiveMQ's next poll sees the refreshed state
+        assertEquals("10.0.0.5", stubDiscovery.getNodeAddresses().get().get(0).getHost());
+    }
+
+    private DnsClusterDiscovery stubDiscovery(final DnsServerAddressStreamProvider nameServerProvider,
+                                              final MetricRegistry registry) {
+        final MetricService stubMetricService = mock(MetricService.class);
+        when(stubMetricService.getMetricRegistry()).thenReturn(registry);
+        final DnsClusterDiscovery discovery =
+                new DnsClusterDiscovery(pluginExecutorService, configuration, stubMetricService, nameServerProvider);
+        discovery.init(null, new ClusterNodeAddress("127.0.0.1", 12345));
+        return discovery;
+    }
 }
@@ -0,0 +1,387 @@
+package com.hivemq.plugin.callbacks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import com.hivemq.spi.services.MetricService;
+import com.hivemq.spi.services.PluginExecutorService;
+import io.netty.resolver.dns.SingletonDnsServerAddressStreamProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a fleet of {@link DnsClusterDiscovery} instances in one JVM against a {@link DnsStubServer} that churns its
+ * record set and injects packet loss and latency.
+ * <p>
+ * Reports DNS queries per second, CPU time and allocation per round, round latency percentiles and the time
+ * until all instances converged on a changed record set. CPU time and allocation only cover the discovery threads,
+ * i.e. the plugin executor and the resolver event loops, not the stub server or the bookkeeping of this test.
+ * Fails if a value exceeds the committed baseline by more than the tolerance, if a value is missing from the
+ * baseline, or if more record changes than {@code unconverged.changes.max} did not converge before the next change.
+ * The baseline is only compared if the tunables match the configuration stored in the baseline.
+ * With {@code -Dsoak.updateBaseline=true} the results are written to {@code target/soak-baseline.properties}
+ * instead, to be copied over the committed baseline.
+ * <p>
+ * Skipped unless started with {@code -Dsoak=true}. Tunables (system properties, defaults in brackets):
+ * {@code soak.instances} [200], {@code soak.records} [100], {@code soak.duration} [120 s], {@code soak.roundInterval}
+ * [1000 ms], {@code soak.churnInterval} [10000 ms], {@code soak.loss} [0.02], {@code soak.maxLatency} [50 ms],
+ * {@code soak.tolerance} [0.25], {@code soak.baseline} [src/main/test/resources/soak-baseline.properties],
+ * {@code soak.updateBaseline} [false].
+ */
+public class DnsDiscoverySoakTest {
+
+    private static final String DISCOVERY_ADDRESS = "soak.hivemq.local";
+    private static final String PLUGIN_EXECUTOR_THREAD_NAME = "soak-plugin-executor";
+    private static final String UNCONVERGED_LIMIT = "unconverged.changes.max";
+
+    private final int instanceCount = Integer.getInteger("soak.instances", 200);
+    // more than ~120 A records do not fit into the 4096 byte UDP payload of the resolver
+    private final int recordCount = Integer.getInteger("soak.records", 100);
+    private final long durationMillis = TimeUnit.SECONDS.toMillis(Integer.getInteger("soak.duration", 120));
+    private final long roundIntervalMillis = Integer.getInteger("soak.roundInterval", 1000);
+    // with packet loss the last instances converge after two or three rounds, leave room for that
+    private final long churnIntervalMillis = Integer.getInteger("soak.churnInterval", 10000);
+    private final double lossRate = Double.parseDouble(System.getProperty("soak.loss", "0.02"));
+    private final int maxLatencyMillis = Integer.getInteger("soak.maxLatency", 50);
+    private final double tolerance = Double.parseDouble(System.getProperty("soak.tolerance", "0.25"));
+    private final File baselineFile = new File(System.getProperty("soak.baseline", "src/main/test/resources/soak-baseline.properties"));
+    private final File baselineOutputFile = new File("target/soak-baseline.properties");
+
+    private DnsStubServer dnsServer;
+    private ListeningExecutorService pluginExecutor;
+    private ScheduledExecutorService scheduler;
+    private ExecutorService harnessExecutor;
+    private final List<DnsClusterDiscovery> instances = new ArrayList<>();
+
+    private final ConcurrentLinkedQueue<Long> roundLatencies = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> convergenceTimes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong unconvergedChanges = new AtomicLong();
+    private final AtomicLong rounds = new AtomicLong();
+    private volatile Epoch epoch;
+    private volatile boolean running;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(Boolean.getBoolean("soak"));
+
+        dnsServer = new DnsStubServer(DISCOVERY_ADDRESS);
+        dnsServer.setLossRate(lossRate);
+        dnsServer.setLatency(0, maxLatencyMillis);
+
+        pluginExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(32,
+                new ThreadFactoryBuilder().setNameFormat(PLUGIN_EXECUTOR_THREAD_NAME + "-%d").build()));
+        scheduler = Executors.newScheduledThreadPool(2);
+        // keeps the bookkeeping of finished rounds off the measured discovery threads
+        harnessExecutor = Executors.newFixedThreadPool(2);
+
+        final PluginExecutorService pluginExecutorService = mock(PluginExecutorService.class);
+        when(pluginExecutorService.submit(any(Callable.class)))
+                .thenAnswer(invocation -> pluginExecutor.submit((Callable<?>) invocation.getArguments()[0]));
+
+        final DnsDiscoveryConfiguration configuration = mock(DnsDiscoveryConfiguration.class);
+        when(configuration.discoveryAddress()).thenReturn(DISCOVERY_ADDRESS);
+        when(configuration.resolutionTimeout()).thenReturn(2);
+        when(configuration.circuitBreakerFailureThreshold()).thenReturn(3);
+        when(configuration.circuitBreakerBackoff()).thenReturn(1);
+        when(configuration.circuitBreakerMaxBackoff()).thenReturn(5);
+
+        final MetricService metricService = mock(MetricService.class);
+        when(metricService.getMetricRegistry()).thenAnswer(invocation -> new MetricRegistry());
+
+        final SingletonDnsServerAddressStreamProvider nameServerProvider =
+                new SingletonDnsServerAddressStreamProvider(dnsServer.address());
+        for (int i = 0; i < instanceCount; i++) {
+            final DnsClusterDiscovery discovery =
+                    new DnsClusterDiscovery(pluginExecutorService, configuration, metricService, nameServerProvider);
+            discovery.init(null, new ClusterNodeAddress("127.0.0.1", 7800));
+            instances.add(discovery);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        running = false;
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (pluginExecutor != null) {
+            pluginExecutor.shutdownNow();
+        }
+        if (harnessExecutor != null) {
+            harnessExecutor.shutdownNow();
+        }
+        instances.forEach(DnsClusterDiscovery::destroy);
+        if (dnsServer != null) {
+            dnsServer.close();
+        }
+    }
+
+    @Test
+    public void test_fleet_soak() throws Exception {
+        final List<InetAddress> records = new ArrayList<>();
+        for (int i = 0; i < recordCount; i++) {
+            records.add(address(i));
+        }
+        publish(records);
+
+        final long[] usageStart = discoveryThreadUsage();
+        final long queriesStart = dnsServer.queryCount();
+        final long start = System.nanoTime();
+
+        running = true;
+        for (int i = 0; i < instances.size(); i++) {
+            scheduleRound(i, ThreadLocalRandom.current().nextLong(roundIntervalMillis));
+        }
+        final AtomicLong nextAddress = new AtomicLong(recordCount);
+        scheduler.scheduleAtFixedRate(() -> {
+            final List<InetAddress> changed = new ArrayList<>(epoch.records);
+            changed.set(ThreadLocalRandom.current().nextInt(changed.size()), address((int) nextAddress.getAndIncrement()));
+            publish(changed);
+        }, churnIntervalMillis, churnIntervalMillis, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(durationMillis);
+        running = false;
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(10, TimeUnit.SECONDS));
+        // let in-flight rounds finish, they time out after the resolution timeout at the latest
+        Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+        // the last change may have happened just before the end, only count it if it converged
+        if (epoch.convergedAt > 0) {
+            closeEpoch(epoch);
+        }
+
+        final double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+        final long roundCount = Math.max(1, rounds.get());
+        final long queries = dnsServer.queryCount() - queriesStart;
+        final long[] usage = discoveryThreadUsage();
+
+        final Map<String, Double> results = new LinkedHashMap<>();
+        results.put("dns.queries.per.second", queries / seconds);
+        results.put("dns.queries.per.round", queries / (double) roundCount);
+        results.put("discovery.cpu.micros.per.round", TimeUnit.NANOSECONDS.toMicros(usage[0] - usageStart[0]) / (double) roundCount);
+        results.put("discovery.allocated.kb.per.round", (usage[1] - usageStart[1]) / 1024.0 / roundCount);
+        results.put("round.latency.p50.ms", percentile(roundLatencies, 0.50));
+        results.put("round.latency.p95.ms", percentile(roundLatencies, 0.95));
+        results.put("round.latency.p99.ms", percentile(roundLatencies, 0.99));
+        results.put("convergence.p50.ms", percentile(convergenceTimes, 0.50));
+        results.put("convergence.max.ms", percentile(convergenceTimes, 1.0));
+
+        System.out.printf("DNS discovery soak: %d instances, %d records, %d rounds in %.1f s, %d of %d record changes did not converge%n",
+                instanceCount, recordCount, rounds.get(), seconds, unconvergedChanges.get(), convergenceTimes.size() + unconvergedChanges.get());
+        results.forEach((key, value) -> System.out.printf("  %-25s %12.2f%n", key, value));
+
+        compareWithBaseline(results);
+    }
+
+    private void scheduleRound(final int instance, final long delayMillis) {
+        if (!running) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> round(instance), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // the scheduler was shut down at the end of the test
+        }
+    }
+
+    private void round(final int instance) {
+        if (!running) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final ListenableFuture<List<ClusterNodeAddress>> result = instances.get(instance).getNodeAddresses();
+        result.addListener(() -> {
+            final long now = System.nanoTime();
+            roundLatencies.add(now - start);
+            rounds.incrementAndGet();
+            try {
+                final Set<String> hosts = new HashSet<>();
+                result.get().forEach((address) -> hosts.add(address.getHost()));
+                final Epoch current = epoch;
+                if (hosts.equals(current.hosts) && current.converged.add(instance)
+                        && current.converged.size() == instanceCount) {
+                    current.convergedAt = now;
+                }
+            } catch (Exception e) {
+                // failed rounds simply do not converge
+            }
+            scheduleRound(instance, roundIntervalMillis);
+        }, harnessExecutor);
+    }
+
+    private void publish(final List<InetAddress> records) {
+        final Epoch previous = epoch;
+        epoch = new Epoch(records);
+        dnsServer.setRecords(records);
+        if (previous != null) {
+            closeEpoch(previous);
+        }
+    }
+
+    private void closeEpoch(final Epoch closed) {
+        if (closed.convergedAt > 0) {
+            convergenceTimes.add(closed.convergedAt - closed.start);
+        } else {
+            // not part of the convergence times, they are checked against their own limit
+            unconvergedChanges.incrementAndGet();
+        }
+    }
+
+    private void compareWithBaseline(final Map<String, Double> results) throws IOException {
+        final Map<String, String> configuration = configuration();
+        if (Boolean.getBoolean("soak.updateBaseline")) {
+            if (unconvergedChanges.get() > 0) {
+                fail(unconvergedChanges.get() + " record changes did not converge, not writing a baseline");
+            }
+            final Properties baseline = new Properties();
+            baseline.putAll(configuration);
+            baseline.setProperty(UNCONVERGED_LIMIT, "0");
+            results.forEach((key, value) -> baseline.setProperty(key, String.format("%.2f", value)));
+            baselineOutputFile.getAbsoluteFile().getParentFile().mkdirs();
+            try (FileWriter writer = new FileWriter(baselineOutputFile)) {
+                baseline.store(writer, "DNS discovery soak baseline");
+            }
+            System.out.println("Soak baseline written to " + baselineOutputFile.getAbsolutePath()
+                    + ", copy it to " + baselineFile.getPath() + " to update the committed baseline");
+            return;
+        }
+        if (!baselineFile.exists()) {
+            fail("Soak baseline " + baselineFile.getAbsolutePath() + " does not exist, "
+                    + "run with -Dsoak.updateBaseline=true to measure one or set -Dsoak.baseline");
+        }
+
+        final Properties baseline = new Properties();
+        try (FileReader reader = new FileReader(baselineFile)) {
+            baseline.load(reader);
+        }
+        for (final Map.Entry<String, String> setting : configuration.entrySet()) {
+            assumeTrue("Soak configuration " + setting.getKey() + "=" + setting.getValue() + " differs from baseline "
+                            + baselineFile + ", not comparing",
+                    setting.getValue().equals(baseline.getProperty(setting.getKey())));
+        }
+        final List<String> regressions = new ArrayList<>();
+        final long unconvergedLimit = Long.parseLong(baseline.getProperty(UNCONVERGED_LIMIT, "0"));
+        if (unconvergedChanges.get() > unconvergedLimit) {
+            regressions.add(String.format("unconverged changes: %d > %d", unconvergedChanges.get(), unconvergedLimit));
+        }
+        for (final Map.Entry<String, Double> result : results.entrySet()) {
+            // queries per second scale with the fleet size and are only reported
+            if (result.getKey().equals("dns.queries.per.second")) {
+                continue;
+            }
+            final String expected = baseline.getProperty(result.getKey());
+            if (expected == null) {
+                regressions.add(result.getKey() + ": missing from baseline");
+                continue;
+            }
+            final double limit = Double.parseDouble(expected) * (1 + tolerance);
+            if (result.getValue() > limit) {
+                regressions.add(String.format("%s: %.2f > %.2f", result.getKey(), result.getValue(), limit));
+            }
+        }
+        if (!regressions.isEmpty()) {
+            fail("Soak test regressed against baseline " + baselineFile + ": " + regressions);
+        }
+    }
+
+    private Map<String, String> configuration() {
+        final Map<String, String> configuration = new LinkedHashMap<>();
+        configuration.put("config.instances", String.valueOf(instanceCount));
+        configuration.put("config.records", String.valueOf(recordCount));
+        configuration.put("config.duration", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(durationMillis)));
+        configuration.put("config.roundInterval", String.valueOf(roundIntervalMillis));
+        configuration.put("config.churnInterval", String.valueOf(churnIntervalMillis));
+        configuration.put("config.loss", String.valueOf(lossRate));
+        configuration.put("config.maxLatency", String.valueOf(maxLatencyMillis));
+        return configuration;
+    }
+
+    private static double percentile(final ConcurrentLinkedQueue<Long> nanos, final double percentile) {
+        final List<Long> sorted = new ArrayList<>(nanos);
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(sorted);
+        final int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the CPU time in nanoseconds and the allocated bytes of the plugin executor and resolver threads,
+     * threads which terminated in the meantime are not included
+     */
+    private static long[] discoveryThreadUsage() {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long[] usage = new long[2];
+        for (final ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds())) {
+            // null for threads which terminated in the meantime
+            if (thread == null || !(thread.getThreadName().startsWith(PLUGIN_EXECUTOR_THREAD_NAME)
+                    || thread.getThreadName().startsWith(DnsClusterDiscovery.RESOLVER_THREAD_POOL_NAME))) {
+                continue;
+            }
+            usage[0] += Math.max(0, threads.getThreadCpuTime(thread.getThreadId()));
+            usage[1] += Math.max(0, threads.getThreadAllocatedBytes(thread.getThreadId()));
+        }
+        return usage;
+    }
+
+    private static InetAddress address(final int index) {
+        try {
+            return InetAddress.getByAddress(new byte[]{10, (byte) (index >> 16), (byte) (index >> 8), (byte) index});
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Epoch {
+        final long start = System.nanoTime();
+        final List<InetAddress> records;
+        final Set<String> hosts = new HashSet<>();
+        final Set<Integer> converged = ConcurrentHashMap.newKeySet();
+        volatile long convergedAt;
+
+        Epoch(final List<InetAddress> records) {
+            this.records = records;
+            records.forEach((record) -> hosts.add(record.getHostAddress()));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.hivemq.plugin.callbacks;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DatagramDnsQuery;
+import io.netty.handler.codec.dns.DatagramDnsQueryDecoder;
+import io.netty.handler.codec.dns.DatagramDnsResponse;
+import io.netty.handler.codec.dns.DatagramDnsResponseEncoder;
+import io.netty.handler.codec.dns.DefaultDnsRawRecord;
+import io.netty.handler.codec.dns.DnsQuestion;
+import io.netty.handler.codec.dns.DnsRecordType;
+import io.netty.handler.codec.dns.DnsResponseCode;
+import io.netty.handler.codec.dns.DnsSection;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal in-process DNS server answering A queries for a single name, with optional packet loss and latency.
+ * Queries for other names are answered with NXDOMAIN, other record types for the name with an empty answer.
+ * A response code can be set to simulate server failures.
+ */
+class DnsStubServer implements AutoCloseable {
+
+    private final String name;
+    private final NioEventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+    private final AtomicLong queries = new AtomicLong();
+    private final Channel channel;
+
+    private volatile List<InetAddress> records = Collections.emptyList();
+    private volatile double lossRate;
+    private volatile int minLatencyMillis;
+    private volatile int maxLatencyMillis;
+    private volatile DnsResponseCode responseCode;
+
+    DnsStubServer(final String name) throws InterruptedException {
+        this.name = name.endsWith(".") ? name : name + ".";
+        channel = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(NioDatagramChannel.class)
+                .handler(new ChannelInitializer<DatagramChannel>() {
+                    @Override
+                    protected void initChannel(final DatagramChannel ch) {
+                        ch.pipeline().addLast(new DatagramDnsQueryDecoder(), new DatagramDnsResponseEncoder(), new QueryHandler());
+                    }
+                })
+                .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+    }
+
+    InetSocketAddress address() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    void setRecords(final List<InetAddress> records) {
+        this.records = records;
+    }
+
+    void setLossRate(final double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    void setLatency(final int minLatencyMillis, final int maxLatencyMillis) {
+        this.minLatencyMillis = minLatencyMillis;
+        this.maxLatencyMillis = maxLatencyMillis;
+    }
+
+    /**
+     * @param responseCode the response code of all answers, e.g. SERVFAIL, null to answer normally
+     */
+    void setResponseCode(final DnsResponseCode responseCode) {
+        this.responseCode = responseCode;
+    }
+
+    long queryCount() {
+        return queries.get();
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    private class QueryHandler extends SimpleChannelInboundHandler<DatagramDnsQuery> {
+
+        @Override
+        protected void channelRead0(final ChannelHandlerContext ctx, final DatagramDnsQuery query) {
+            queries.incrementAndGet();
+            final ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (random.nextDouble() < lossRate) {
+                return;
+            }
+
+            final DnsQuestion question = query.recordAt(DnsSection.QUESTION);
+            final DatagramDnsResponse response = new DatagramDnsResponse(query.recipient(), query.sender(), query.id());
+            response.addRecord(DnsSection.QUESTION, question);
+            if (responseCode != null) {
+                response.setCode(responseCode);
+            } else if (!name.equalsIgnoreCase(question.name())) {
+                response.setCode(DnsResponseCode.NXDOMAIN);
+            } else if (question.type() == DnsRecordType.A) {
+                for (final InetAddress record : records) {
+                    response.addRecord(DnsSection.ANSWER,
+                            new DefaultDnsRawRecord(question.name(), DnsRecordType.A, 5, Unpooled.wrappedBuffer(record.getAddress())));
+                }
+            }
+            final int latency = maxLatencyMillis <= 0 ? 0 : random.nextInt(minLatencyMillis, maxLatencyMillis + 1);
+            if (latency == 0) {
+                ctx.writeAndFlush(response);
+            } else {
+                ctx.channel().eventLoop().schedule(() -> ctx.writeAndFlush(response), latency, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.hivemq.plugin.callbacks;
+
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PeerSubsetSelectorTest {
+
+    @Test
+    public void test_disabled_returns_all() {
+        final List<ClusterNodeAddress> addresses = cluster(10);
+
+        assertSame(addresses, PeerSubsetSelector.select(addresses.get(0), addresses, 0));
+        assertSame(addresses, PeerSubsetSelector.select(addresses.get(0), addresses, 9));
+    }
+
+    @Test
+    public void test_subset_is_bounded_and_contains_own_address() {
+        final List<ClusterNodeAddress> addresses = cluster(300);
+
+        final List<ClusterNodeAddress> subset = PeerSubsetSelector.select(addresses.get(42), addresses, 8);
+
+        assertEquals(9, subset.size());
+        assertTrue(hosts(subset).contains(addresses.get(42).getHost()));
+    }
+
+    @Test
+    public void test_subset_is_deterministic() {
+        final List<ClusterNodeAddress> addresses = cluster(300);
+        final List<ClusterNodeAddress> reversed = new ArrayList<>(addresses);
+        Collections.reverse(reversed);
+
+        assertEquals(hosts(PeerSubsetSelector.select(addresses.get(7), addresses, 8)),
+                hosts(PeerSubsetSelector.select(addresses.get(7), reversed, 8)));
+    }
+
+    @Test
+    public void test_subset_is_stable_when_node_joins() {
+        final List<ClusterNodeAddress> addresses = cluster(300);
+        final Set<String> before = hosts(PeerSubsetSelector.select(addresses.get(7), addresses, 8));
+
+        addresses.add(new ClusterNodeAddress("10.1.0.1", 7800));
+        final Set<String> after = hosts(PeerSubsetSelector.select(addresses.get(7), addresses, 8));
+
+        final Set<String> changed = new HashSet<>(before);
+        changed.removeAll(after);
+        // at most a ring neighbour and one rendezvous slot are taken over by the new node
+        assertTrue(changed.size() <= 1);
+    }
+
+    @Test
+    public void test_cluster_stays_connected() {
+        final List<ClusterNodeAddress> addresses = cluster(500);
+        final Map<String, Set<String>> links = new HashMap<>();
+        for (final ClusterNodeAddress node : addresses) {
+            for (final String peer : hosts(PeerSubsetSelector.select(node, addresses, 3))) {
+                links.computeIfAbsent(node.getHost(), (key) -> new HashSet<>()).add(peer);
+                links.computeIfAbsent(peer, (key) -> new HashSet<>()).add(node.getHost());
+            }
+        }
+
+        final Set<String> reached = new HashSet<>();
+        final Deque<String> queue = new ArrayDeque<>();
+        queue.add(addresses.get(0).getHost());
+        while (!queue.isEmpty()) {
+            final String host = queue.poll();
+            if (reached.add(host)) {
+                queue.addAll(links.get(host));
+            }
+        }
+        assertEquals(addresses.size(), reached.size());
+    }
+
+    private static List<ClusterNodeAddress> cluster(final int size) {
+        final List<ClusterNodeAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            addresses.add(new ClusterNodeAddress("10.0." + (i / 250) + "." + (i % 250 + 1), 7800));
+        }
+        return addresses;
+    }
+
+    private static Set<String> hosts(final List<ClusterNodeAddress> addresses) {
+        final Set<String> hosts = new HashSet<>();
+        addresses.forEach((address) -> hosts.add(address.getHost()));
+        return hosts;
+    }
+}
@@ -0,0 +1,45 @@
+package com.hivemq.plugin.callbacks;
+
+import com.google.common.collect.Lists;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class StaticClusterDiscoveryTest {
+
+    @Test
+    public void test_parse_addresses() {
+        assertEquals(12345, StaticClusterDiscovery.parse("node1", 12345).getPort());
+        assertEquals("node1", StaticClusterDiscovery.parse("node1:7800", 12345).getHost());
+        assertEquals(7800, StaticClusterDiscovery.parse("node1:7800", 12345).getPort());
+        assertEquals("::1", StaticClusterDiscovery.parse("[::1]:7800", 12345).getHost());
+        assertEquals(7800, StaticClusterDiscovery.parse("[::1]:7800", 12345).getPort());
+        assertEquals("fe80::1", StaticClusterDiscovery.parse("fe80::1", 12345).getHost());
+        assertEquals(12345, StaticClusterDiscovery.parse("fe80::1", 12345).getPort());
+    }
+
+    @Test
+    public void test_parse_malformed_addresses() {
+        assertNull(StaticClusterDiscovery.parse("node1:port", 12345));
+        assertNull(StaticClusterDiscovery.parse("[::1", 12345));
+        assertNull(StaticClusterDiscovery.parse("[::1]7800", 12345));
+        assertNull(StaticClusterDiscovery.parse(":7800", 12345));
+    }
+
+    @Test
+    public void test_malformed_entries_are_skipped() throws Exception {
+        final StaticClusterDiscovery discovery = new StaticClusterDiscovery(
+                () -> Lists.newArrayList("10.0.0.1", "node1:port", "10.0.0.2:7800"));
+        discovery.init(null, new ClusterNodeAddress("10.0.0.1", 12345));
+
+        final List<ClusterNodeAddress> addresses = discovery.getNodeAddresses().get();
+
+        assertEquals(2, addresses.size());
+        assertEquals(12345, addresses.get(0).getPort());
+        assertEquals(7800, addresses.get(1).getPort());
+    }
+}
@@ -0,0 +1,88 @@
+package com.hivemq.plugin.configuration;
+
+import com.hivemq.spi.config.SystemInformation;
+import com.hivemq.spi.services.PluginExecutorService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class HostsFileConfigurationTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Mock
+    PluginExecutorService pluginExecutorService;
+
+    @Mock
+    SystemInformation systemInformation;
+
+    private HostsFileConfiguration hostsFile;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        when(systemInformation.getConfigFolder()).thenReturn(tmpFolder.getRoot());
+        hostsFile = new HostsFileConfiguration(pluginExecutorService, systemInformation);
+        file = new File(tmpFolder.getRoot(), hostsFile.getFilename());
+    }
+
+    @Test
+    public void test_missing_file_is_polled() throws Exception {
+        hostsFile.postConstruct();
+
+        assertTrue(hostsFile.hosts().isEmpty());
+        verify(pluginExecutorService, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+
+        write("10.0.0.2\n");
+        hostsFile.reload();
+
+        assertEquals(Arrays.asList("10.0.0.2"), hostsFile.hosts());
+    }
+
+    @Test
+    public void test_parse_hosts() throws Exception {
+        write("# comment\n\n10.0.0.3=7800\nnode1\nfe80\\:\\:1=7800\n\\:\\:2\n[\\:\\:3]=7801\n");
+        hostsFile.postConstruct();
+
+        assertEquals(Arrays.asList("10.0.0.3:7800", "::2", "[::3]:7801", "[fe80::1]:7800", "node1"), hostsFile.hosts());
+    }
+
+    @Test
+    public void test_file_removed() throws Exception {
+        write("10.0.0.2\n");
+        hostsFile.postConstruct();
+
+        assertEquals(1, hostsFile.hosts().size());
+
+        assertTrue(file.delete());
+        hostsFile.reload();
+
+        assertTrue(hostsFile.hosts().isEmpty());
+    }
+
+    private void write(final String content) throws Exception {
+        try (FileWriter out = new FileWriter(file)) {
+            out.write(content);
+        }
+    }
+}
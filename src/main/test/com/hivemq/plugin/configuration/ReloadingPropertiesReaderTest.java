@@ -191,19 +191,69 @@ public class ReloadingPropertiesReaderTest {
 
     }
 
+    @Test
+    public void test_optional_file_missing() throws Exception {
+
+        reader = new TestReloadingPropertiesReader(pluginExecutorService, systemInformation, "notexisting", true);
+
+        reader.postConstruct();
+
+        assertTrue(reader.isPropertiesEnabled());
+        assertTrue(reader.getProperties().isEmpty());
+        verify(pluginExecutorService, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void test_optional_file_created_and_removed() throws Exception {
+
+        final File configFolder = tmpFolder.newFolder();
+        when(systemInformation.getConfigFolder()).thenReturn(configFolder);
+        reader = new TestReloadingPropertiesReader(pluginExecutorService, systemInformation, "optional.properties", true);
+        reader.addCallback("test", changedCallback);
+        reader.postConstruct();
+
+        final File optionalFile = new File(configFolder, "optional.properties");
+        try (FileWriter out = new FileWriter(optionalFile)) {
+            out.write("test=123\n");
+            out.flush();
+        }
+        reader.reload();
+
+        assertEquals("123", reader.getProperties().get("test"));
+
+        assertTrue(optionalFile.delete());
+        reader.reload();
+
+        assertTrue(reader.getProperties().isEmpty());
+        Mockito.verify(changedCallback, times(2)).valueChanged(captor.capture());
+        assertEquals("123", captor.getAllValues().get(0));
+        assertNull(captor.getAllValues().get(1));
+    }
+
     private static class TestReloadingPropertiesReader extends ReloadingPropertiesReader {
 
         private final String filename;
+        private final boolean optional;
 
         public TestReloadingPropertiesReader(final PluginExecutorService pluginExecutorService, final SystemInformation systemInformation, final String filename) {
+            this(pluginExecutorService, systemInformation, filename, false);
+        }
+
+        public TestReloadingPropertiesReader(final PluginExecutorService pluginExecutorService, final SystemInformation systemInformation, final String filename, final boolean optional) {
             super(pluginExecutorService, systemInformation);
             this.filename = filename;
+            this.optional = optional;
         }
 
         @Override
         public String getFilename() {
             return filename;
         }
+
+        @Override
+        protected boolean isOptional() {
+            return optional;
+        }
     }
 
 
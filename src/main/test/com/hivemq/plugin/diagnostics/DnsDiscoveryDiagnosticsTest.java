@@ -0,0 +1,111 @@
+package com.hivemq.plugin.diagnostics;
+
+import com.codahale.metrics.Timer;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.hivemq.plugin.callbacks.CompositeClusterDiscovery;
+import com.hivemq.plugin.callbacks.DnsClusterDiscovery;
+import com.hivemq.plugin.configuration.DnsDiscoveryConfiguration;
+import com.hivemq.spi.callback.cluster.ClusterNodeAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class DnsDiscoveryDiagnosticsTest {
+
+    @Mock
+    CompositeClusterDiscovery clusterDiscovery;
+
+    @Mock
+    DnsClusterDiscovery dnsClusterDiscovery;
+
+    @Mock
+    DnsDiscoveryConfiguration configuration;
+
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    private final Timer roundTimer = new Timer();
+
+    private DnsDiscoveryDiagnostics diagnostics;
+
+    private ObjectName objectName;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+
+        when(clusterDiscovery.getRoundTimer()).thenReturn(roundTimer);
+        when(clusterDiscovery.getLastMembership()).thenReturn(Lists.newArrayList(new ClusterNodeAddress("10.0.0.1", 7800)));
+        when(dnsClusterDiscovery.getCircuitBreakerState()).thenReturn("OPEN");
+        when(dnsClusterDiscovery.getLastKnownAddresses()).thenReturn(Lists.newArrayList());
+        when(configuration.resolutionTimeout()).thenReturn(1);
+
+        objectName = new ObjectName(DnsDiscoveryDiagnostics.OBJECT_NAME);
+        diagnostics = new DnsDiscoveryDiagnostics(clusterDiscovery, dnsClusterDiscovery, configuration);
+        diagnostics.register();
+    }
+
+    @After
+    public void tearDown() {
+        diagnostics.unregister();
+    }
+
+    @Test
+    public void test_attributes() throws Exception {
+        roundTimer.update(20, TimeUnit.MILLISECONDS);
+
+        assertTrue(mBeanServer.isRegistered(objectName));
+        assertArrayEquals(new String[]{"10.0.0.1:7800"}, (String[]) mBeanServer.getAttribute(objectName, "LastMembership"));
+        assertNull(mBeanServer.getAttribute(objectName, "LastMembershipTimestamp"));
+        assertEquals("OPEN", mBeanServer.getAttribute(objectName, "CircuitBreakerState"));
+        assertEquals(1L, mBeanServer.getAttribute(objectName, "RoundCount"));
+        assertEquals(20.0, (double) mBeanServer.getAttribute(objectName, "RoundLatencyMaxMillis"), 0.01);
+        assertEquals(0, ((String[]) mBeanServer.getAttribute(objectName, "CachedAddresses")).length);
+    }
+
+    @Test
+    public void test_refresh_invalidates_cache_before_round() throws Exception {
+        when(clusterDiscovery.refreshRound()).thenReturn(
+                Futures.immediateFuture(Lists.newArrayList(new ClusterNodeAddress("10.0.0.2", 7800))));
+
+        final Object result = mBeanServer.invoke(objectName, "refresh", new Object[0], new String[0]);
+
+        assertArrayEquals(new String[]{"10.0.0.2:7800"}, (String[]) result);
+        final InOrder inOrder = inOrder(dnsClusterDiscovery, clusterDiscovery);
+        inOrder.verify(dnsClusterDiscovery).invalidateCache();
+        inOrder.verify(clusterDiscovery).refreshRound();
+        verify(clusterDiscovery, never()).getNodeAddresses();
+    }
+
+    @Test
+    public void test_invalidate_cache() throws Exception {
+        mBeanServer.invoke(objectName, "invalidateCache", new Object[0], new String[0]);
+
+        verify(dnsClusterDiscovery).invalidateCache();
+    }
+
+    @Test
+    public void test_unregister() {
+        diagnostics.unregister();
+
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}